@@ -0,0 +1,284 @@
+/* Copyright (c) 2015, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.device.yearclass;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * {@link DeviceProbe} that keeps the signals of another probe in a file, so that later processes
+ * can classify the device without probing it again.
+ * <p>
+ * Total RAM and the number of CPU cores cannot change without a new build, so they are probed
+ * once per build fingerprint. The CPU clock speed depends on which cores expose their cpufreq
+ * files, so it is probed again whenever {@link DeviceInfo#getOnlineCPUs()} differs from the
+ * value seen when it was cached. It is only cached while every core is online, since hotplugging
+ * kernels such as mpdecision's bring cores up and down between processes. Unknown or implausible
+ * values are never cached.
+ * <p>
+ * Only signals whose probe reads files are worth caching. The file is not opened until one of
+ * them is asked for, and total RAM is passed straight through unless the probe reads it from
+ * {@code /proc/meminfo}, so a device classified by RAM alone on Jelly Bean and later never
+ * touches the cache.
+ * <p>
+ * New signals are only written by {@link #flush()}. The file is replaced through a rename from a
+ * temp file of its own, and carries a checksum, so a write cut short by a crash or read by another
+ * process mid-way is discarded rather than trusted.
+ */
+class CachingDeviceProbe implements DeviceProbe {
+
+  private static final String KEY_FINGERPRINT = "fingerprint";
+  private static final String KEY_CORES = "cores";
+  private static final String KEY_CPU_MAX_FREQ_KHZ = "cpuMaxFreqKHz";
+  private static final String KEY_ONLINE_CPUS = "onlineCPUs";
+  private static final String KEY_TOTAL_MEMORY = "totalMemory";
+  private static final String KEY_CHECKSUM = "checksum";
+
+  // Order in which the signals are written and checksummed.
+  private static final String[] KEYS = {
+      KEY_FINGERPRINT, KEY_CORES, KEY_CPU_MAX_FREQ_KHZ, KEY_ONLINE_CPUS, KEY_TOTAL_MEMORY};
+
+  // Smallest values trusted from the probe or the file.
+  private static final int MIN_CORES = 1;
+  private static final int MIN_CPU_MAX_FREQ_KHZ = 100 * 1000;
+  private static final long MIN_TOTAL_MEMORY = 64 * 1024 * 1024;
+
+  private static final String CHARSET = "UTF-8";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final DeviceProbe mProbe;
+  private final File mCacheFile;
+  private final String mFingerprint;
+  private final boolean mCacheTotalMemory;
+  private final Map<String, String> mCache = new HashMap<String, String>();
+  private boolean mLoaded;
+  private boolean mDirty;
+  // Cores probed by this instance, kept even when they cannot be cached.
+  private Integer mProbedCores;
+
+  /**
+   * @param probe            - Probe to read signals from when the cache cannot answer.
+   * @param cacheFile        - File the signals are kept in between processes.
+   * @param fingerprint      - Build fingerprint the cached signals belong to. Nothing is cached
+   *                         if this is null or spans several lines.
+   * @param cacheTotalMemory - Whether {@code probe} reads the total RAM from a file. If not, it
+   *                         is passed through without being cached.
+   */
+  CachingDeviceProbe(
+      DeviceProbe probe, File cacheFile, String fingerprint, boolean cacheTotalMemory) {
+    mProbe = probe;
+    mCacheFile = cacheFile;
+    // The file holds one value per line, so a fingerprint spanning lines cannot be kept in it.
+    if (fingerprint != null && (fingerprint.indexOf('\n') >= 0 || fingerprint.indexOf('\r') >= 0)) {
+      fingerprint = null;
+    }
+    mFingerprint = fingerprint;
+    mCacheTotalMemory = cacheTotalMemory;
+  }
+
+  @Override
+  public int getNumberOfCPUCores() {
+    loadOnce();
+    int cores = (int) getCached(KEY_CORES, MIN_CORES);
+    if (cores == DeviceInfo.DEVICEINFO_UNKNOWN) {
+      if (mProbedCores == null) {
+        mProbedCores = mProbe.getNumberOfCPUCores();
+        put(KEY_CORES, mProbedCores, MIN_CORES);
+      }
+      cores = mProbedCores;
+    }
+    return cores;
+  }
+
+  @Override
+  public int getCPUMaxFreqKHz() {
+    return getCPUMaxFreqKHz(null);
+  }
+
+  @Override
+  public int getCPUMaxFreqKHz(int cores) {
+    return getCPUMaxFreqKHz(Integer.valueOf(cores));
+  }
+
+  /**
+   * @param cores - Core count to re-probe with, or null to use {@link #getNumberOfCPUCores()},
+   *              which is itself cached. Only looked up when the cached speed is stale.
+   */
+  private int getCPUMaxFreqKHz(Integer cores) {
+    loadOnce();
+    String onlineCPUs = DeviceInfo.getOnlineCPUs();
+    int maxFreq = DeviceInfo.DEVICEINFO_UNKNOWN;
+    if (onlineCPUs != null && onlineCPUs.equals(mCache.get(KEY_ONLINE_CPUS))) {
+      maxFreq = (int) getCached(KEY_CPU_MAX_FREQ_KHZ, MIN_CPU_MAX_FREQ_KHZ);
+    }
+    if (maxFreq == DeviceInfo.DEVICEINFO_UNKNOWN) {
+      if (cores == null) {
+        cores = getNumberOfCPUCores();
+      }
+      maxFreq = mProbe.getCPUMaxFreqKHz(cores);
+      // A speed probed with some cores offline only holds until they come back, and without the
+      // online cores there is nothing to validate the cached speed against later.
+      if (allOnline(onlineCPUs, cores)
+          && put(KEY_CPU_MAX_FREQ_KHZ, maxFreq, MIN_CPU_MAX_FREQ_KHZ)) {
+        mCache.put(KEY_ONLINE_CPUS, onlineCPUs);
+      }
+    }
+    return maxFreq;
+  }
+
+  @Override
+  public long getTotalMemory() {
+    if (!mCacheTotalMemory) {
+      return mProbe.getTotalMemory();
+    }
+    loadOnce();
+    long totalMem = getCached(KEY_TOTAL_MEMORY, MIN_TOTAL_MEMORY);
+    if (totalMem == DeviceInfo.DEVICEINFO_UNKNOWN) {
+      totalMem = mProbe.getTotalMemory();
+      put(KEY_TOTAL_MEMORY, totalMem, MIN_TOTAL_MEMORY);
+    }
+    return totalMem;
+  }
+
+  /**
+   * Writes the signals probed since this instance was created, if any. Call once after
+   * classifying, rather than after every signal.
+   */
+  void flush() {
+    if (!mDirty) {
+      return;
+    }
+    mDirty = false;
+    mCache.put(KEY_FINGERPRINT, mFingerprint);
+    File tempFile = null;
+    try {
+      String contents = serialize();
+      // Unique per flush, so that processes flushing at the same time never share a temp file.
+      tempFile = DeviceInfo.sSystemFiles.createTempFile(
+          mCacheFile.getName(), TEMP_SUFFIX, mCacheFile.getParentFile());
+      OutputStream stream = DeviceInfo.sSystemFiles.create(tempFile);
+      try {
+        stream.write(contents.getBytes(CHARSET));
+        stream.write((KEY_CHECKSUM + "=" + checksum(contents) + "\n").getBytes(CHARSET));
+      } finally {
+        stream.close();
+      }
+      if (!DeviceInfo.sSystemFiles.rename(tempFile, mCacheFile)) {
+        tempFile.delete();
+      }
+    } catch (IOException e) {
+      //Fall through; the signals are probed again next time.
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Whether {@code onlineCPUs}, in the kernel's list format, covers cores 0 to {@code cores - 1}.
+   */
+  private static boolean allOnline(String onlineCPUs, int cores) {
+    if (onlineCPUs == null || cores < MIN_CORES) {
+      return false;
+    }
+    return onlineCPUs.equals(cores == 1 ? "0" : "0-" + (cores - 1));
+  }
+
+  private long getCached(String key, long minValue) {
+    String value = mCache.get(key);
+    if (value == null) {
+      return DeviceInfo.DEVICEINFO_UNKNOWN;
+    }
+    try {
+      long parsed = Long.parseLong(value);
+      return parsed >= minValue ? parsed : DeviceInfo.DEVICEINFO_UNKNOWN;
+    } catch (NumberFormatException e) {
+      return DeviceInfo.DEVICEINFO_UNKNOWN;
+    }
+  }
+
+  private boolean put(String key, long value, long minValue) {
+    if (mFingerprint == null || value < minValue) {
+      return false;
+    }
+    mCache.put(key, String.valueOf(value));
+    mDirty = true;
+    return true;
+  }
+
+  private void loadOnce() {
+    if (mLoaded) {
+      return;
+    }
+    mLoaded = true;
+    load();
+    if (mFingerprint == null || !mFingerprint.equals(mCache.get(KEY_FINGERPRINT))) {
+      mCache.clear();
+    }
+  }
+
+  private void load() {
+    try {
+      InputStream stream = DeviceInfo.sSystemFiles.open(mCacheFile);
+      String checksum = null;
+      try {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, CHARSET));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          int separator = line.indexOf('=');
+          if (separator < 0) {
+            checksum = null;
+            break;
+          }
+          String key = line.substring(0, separator);
+          String value = line.substring(separator + 1);
+          if (KEY_CHECKSUM.equals(key)) {
+            checksum = value;
+          } else {
+            mCache.put(key, value);
+          }
+        }
+      } finally {
+        stream.close();
+      }
+      if (checksum == null || !checksum.equals(checksum(serialize()))) {
+        mCache.clear();
+      }
+    } catch (IOException e) {
+      //No usable cache yet; every signal is probed.
+      mCache.clear();
+    }
+  }
+
+  /**
+   * The cached signals in {@link #KEYS} order, one {@code key=value} line each. Lines are split
+   * at their first {@code =} when read back, so a value may hold anything but a line break.
+   */
+  private String serialize() {
+    StringBuilder contents = new StringBuilder();
+    for (String key : KEYS) {
+      String value = mCache.get(key);
+      if (value != null) {
+        contents.append(key).append('=').append(value).append('\n');
+      }
+    }
+    return contents.toString();
+  }
+
+  private static String checksum(String contents) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(contents.getBytes(CHARSET));
+    return Long.toHexString(crc.getValue());
+  }
+}
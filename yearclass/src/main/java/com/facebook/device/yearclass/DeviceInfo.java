@@ -26,6 +26,11 @@ public class DeviceInfo {
    */
   public static final int DEVICEINFO_UNKNOWN = -1;
 
+  /**
+   * Source of every system file read by this class. Tests point it at a captured device tree.
+   */
+  static SystemFiles sSystemFiles = new SystemFiles();
+
   /**
    * Reads the number of CPU cores from the first available information from
    * {@code /sys/devices/system/cpu/possible}, {@code /sys/devices/system/cpu/present},
@@ -41,6 +46,15 @@ public class DeviceInfo {
       // the foreground application. But for our purposes, it makes them single core.
       return 1;
     }
+    return getCoresFromSystemFiles();
+  }
+
+  /**
+   * Reads the number of CPU cores from the system files, without any API level adjustment.
+   *
+   * @return Number of CPU cores in the phone, or DEVICEINFO_UKNOWN = -1 in the event of an error.
+   */
+  static int getCoresFromSystemFiles() {
     int cores;
     try {
       cores = getCoresFromFileInfo("/sys/devices/system/cpu/possible");
@@ -64,15 +78,40 @@ public class DeviceInfo {
    * @return Number of CPU cores in the phone, or DEVICEINFO_UKNOWN = -1 in the event of an error.
    */
   private static int getCoresFromFileInfo(String fileLocation) {
+    return getCoresFromFileString(readFirstLine(fileLocation));
+  }
+
+  /**
+   * Reads the list of online CPU cores from {@code /sys/devices/system/cpu/online}. This is a
+   * single small read, cheap enough to tell whether the cores visible to
+   * {@link #getCPUMaxFreqKHz()} have changed since it last ran.
+   *
+   * @return The online cores in the kernel's list format (e.g. "0-3,6"), or null in the event of
+   * an error.
+   */
+  static String getOnlineCPUs() {
+    try {
+      return readFirstLine("/sys/devices/system/cpu/online");
+    } catch (SecurityException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads the first line of a system file.
+   * @param fileLocation The location of the file to read
+   * @return The first line of the file, or null in the event of an error.
+   */
+  private static String readFirstLine(String fileLocation) {
     InputStream is = null;
     try {
-      is = new FileInputStream(fileLocation);
+      is = sSystemFiles.open(sSystemFiles.get(fileLocation));
       BufferedReader buf = new BufferedReader(new InputStreamReader(is));
       String fileContents = buf.readLine();
       buf.close();
-      return getCoresFromFileString(fileContents);
+      return fileContents;
     } catch (IOException e) {
-      return DEVICEINFO_UNKNOWN;
+      return null;
     } finally {
       if (is != null) {
         try {
@@ -98,7 +137,7 @@ public class DeviceInfo {
   }
 
   private static int getCoresFromCPUFileList() {
-    return new File("/sys/devices/system/cpu/").listFiles(CPU_FILTER).length;
+    return sSystemFiles.listFiles(sSystemFiles.get("/sys/devices/system/cpu/"), CPU_FILTER).length;
   }
 
   private static final FileFilter CPU_FILTER = new FileFilter() {
@@ -125,15 +164,25 @@ public class DeviceInfo {
    * @return Clock speed of a core on the device, or -1 in the event of an error.
    */
   public static int getCPUMaxFreqKHz() {
+    return getCPUMaxFreqKHz(getNumberOfCPUCores());
+  }
+
+  /**
+   * Reads the highest clock speed among the first {@code cores} CPU cores.
+   *
+   * @param cores - Number of cores to check, as returned by {@link #getNumberOfCPUCores()}.
+   * @return Clock speed of a core on the device, or -1 in the event of an error.
+   */
+  static int getCPUMaxFreqKHz(int cores) {
     int maxFreq = DEVICEINFO_UNKNOWN;
     try {
-      for (int i = 0; i < getNumberOfCPUCores(); i++) {
+      for (int i = 0; i < cores; i++) {
         String filename =
             "/sys/devices/system/cpu/cpu" + i + "/cpufreq/cpuinfo_max_freq";
-        File cpuInfoMaxFreqFile = new File(filename);
-        if (cpuInfoMaxFreqFile.exists() && cpuInfoMaxFreqFile.canRead()) {
+        File cpuInfoMaxFreqFile = sSystemFiles.get(filename);
+        if (sSystemFiles.exists(cpuInfoMaxFreqFile) && sSystemFiles.canRead(cpuInfoMaxFreqFile)) {
           byte[] buffer = new byte[128];
-          FileInputStream stream = new FileInputStream(cpuInfoMaxFreqFile);
+          InputStream stream = sSystemFiles.open(cpuInfoMaxFreqFile);
           try {
             stream.read(buffer);
             int endIndex = 0;
@@ -154,7 +203,7 @@ public class DeviceInfo {
         }
       }
       if (maxFreq == DEVICEINFO_UNKNOWN) {
-        FileInputStream stream = new FileInputStream("/proc/cpuinfo");
+        InputStream stream = sSystemFiles.open(sSystemFiles.get("/proc/cpuinfo"));
         try {
           int freqBound = parseFileForValue("cpu MHz", stream);
           freqBound *= 1000; //MHz -> kHz
@@ -188,30 +237,39 @@ public class DeviceInfo {
         return DEVICEINFO_UNKNOWN;
       }
     } else {
-      long totalMem = DEVICEINFO_UNKNOWN;
+      return getTotalMemoryFromProcMeminfo();
+    }
+  }
+
+  /**
+   * Reads the total RAM of the device from /proc/meminfo.
+   *
+   * @return Total RAM that the device has, or DEVICEINFO_UNKNOWN = -1 in the event of an error.
+   */
+  static long getTotalMemoryFromProcMeminfo() {
+    long totalMem = DEVICEINFO_UNKNOWN;
+    try {
+      InputStream stream = sSystemFiles.open(sSystemFiles.get("/proc/meminfo"));
       try {
-        FileInputStream stream = new FileInputStream("/proc/meminfo");
-        try {
-          totalMem = parseFileForValue("MemTotal", stream);
-          totalMem *= 1024;
-        } finally {
-          stream.close();
-        }
-      } catch (IOException e) {
+        totalMem = parseFileForValue("MemTotal", stream);
+        totalMem *= 1024;
+      } finally {
+        stream.close();
       }
-      return totalMem;
+    } catch (IOException e) {
     }
+    return totalMem;
   }
 
   /**
    * Helper method for reading values from system files, using a minimised buffer.
    *
    * @param textToMatch - Text in the system files to read for.
-   * @param stream      - FileInputStream of the system file being read from.
+   * @param stream      - InputStream of the system file being read from.
    * @return A numerical value following textToMatch in specified the system file.
    * -1 in the event of a failure.
    */
-  private static int parseFileForValue(String textToMatch, FileInputStream stream) {
+  private static int parseFileForValue(String textToMatch, InputStream stream) {
     byte[] buffer = new byte[1024];
     try {
       int length = stream.read(buffer);
@@ -239,7 +297,7 @@ public class DeviceInfo {
   }
 
   /**
-   * Helper method used by {@link #parseFileForValue(String, FileInputStream) parseFileForValue}. Parses
+   * Helper method used by {@link #parseFileForValue(String, InputStream) parseFileForValue}. Parses
    * the next available number after the match in the file being read and returns it as an integer.
    * @param index - The index in the buffer array to begin looking.
    * @return The next number on that line in the buffer, returned as an int. Returns
@@ -0,0 +1,27 @@
+/* Copyright (c) 2015, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.device.yearclass;
+
+/**
+ * The hardware signals {@link YearClass} classifies a device by. Each method may be called
+ * lazily and more than once; values follow the {@link DeviceInfo} conventions, including
+ * {@link DeviceInfo#DEVICEINFO_UNKNOWN} on failure.
+ */
+interface DeviceProbe {
+
+  int getNumberOfCPUCores();
+
+  int getCPUMaxFreqKHz();
+
+  /**
+   * Same as {@link #getCPUMaxFreqKHz()}, for callers that already know the core count.
+   */
+  int getCPUMaxFreqKHz(int cores);
+
+  long getTotalMemory();
+}
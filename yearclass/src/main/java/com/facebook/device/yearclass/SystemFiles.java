@@ -0,0 +1,56 @@
+/* Copyright (c) 2015, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.device.yearclass;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Resolves, checks, lists and opens the {@code /proc} and {@code /sys} files that
+ * {@link DeviceInfo} probes, and reads and writes the {@link CachingDeviceProbe} file. Tests
+ * replace it with an instance rooted at a captured device tree.
+ */
+class SystemFiles {
+
+  File get(String path) {
+    return new File(path);
+  }
+
+  boolean exists(File file) {
+    return file.exists();
+  }
+
+  boolean canRead(File file) {
+    return file.canRead();
+  }
+
+  File[] listFiles(File directory, FileFilter filter) {
+    return directory.listFiles(filter);
+  }
+
+  InputStream open(File file) throws IOException {
+    return new FileInputStream(file);
+  }
+
+  File createTempFile(String prefix, String suffix, File directory) throws IOException {
+    return File.createTempFile(prefix, suffix, directory);
+  }
+
+  OutputStream create(File file) throws IOException {
+    return new FileOutputStream(file);
+  }
+
+  boolean rename(File from, File to) {
+    return from.renameTo(to);
+  }
+}
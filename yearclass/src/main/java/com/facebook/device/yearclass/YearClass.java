@@ -8,7 +8,9 @@
 package com.facebook.device.yearclass;
 
 import android.content.Context;
+import android.os.Build;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 
@@ -28,6 +30,8 @@ public class YearClass {
   private static final long MB = 1024 * 1024;
   private static final int MHZ_IN_KHZ = 1000;
 
+  private static final String CACHE_FILE_NAME = "yearclass-signals.properties";
+
   private volatile static Integer mYearCategory;
 
   /**
@@ -42,13 +46,66 @@ public class YearClass {
     if (mYearCategory == null) {
       synchronized(YearClass.class) {
         if (mYearCategory == null) {
-          mYearCategory = categorizeByYear2016Method(c);
+          mYearCategory = categorizeWithCache(c);
         }
       }
     }
     return mYearCategory;
   }
 
+  /**
+   * Year class of the device described by {@code probe}, using the current classification model.
+   */
+  static int categorize(DeviceProbe probe) {
+    return categorizeByYear2016Method(probe);
+  }
+
+  /**
+   * Probe backed by the {@link DeviceInfo} readings of the running device.
+   */
+  static DeviceProbe systemProbe(final Context c) {
+    return new DeviceProbe() {
+      @Override
+      public int getNumberOfCPUCores() {
+        return DeviceInfo.getNumberOfCPUCores();
+      }
+
+      @Override
+      public int getCPUMaxFreqKHz() {
+        return DeviceInfo.getCPUMaxFreqKHz();
+      }
+
+      @Override
+      public int getCPUMaxFreqKHz(int cores) {
+        return DeviceInfo.getCPUMaxFreqKHz(cores);
+      }
+
+      @Override
+      public long getTotalMemory() {
+        return DeviceInfo.getTotalMemory(c);
+      }
+    };
+  }
+
+  /**
+   * Classifies through a {@link CachingDeviceProbe} kept in the app's cache directory, so that
+   * classifying again in a later process only reads the signals that can have changed. Total RAM
+   * only comes from {@code /proc/meminfo} before Jelly Bean, so it is only cached there. Without
+   * a context there is nowhere to keep the signals, and every probe runs.
+   */
+  private static int categorizeWithCache(Context c) {
+    File cacheDir = c != null ? c.getCacheDir() : null;
+    if (cacheDir == null) {
+      return categorize(systemProbe(c));
+    }
+    CachingDeviceProbe probe = new CachingDeviceProbe(systemProbe(c),
+        new File(cacheDir, CACHE_FILE_NAME), Build.FINGERPRINT,
+        Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN);
+    int yearClass = categorize(probe);
+    probe.flush();
+    return yearClass;
+  }
+
   private static void conditionallyAdd(ArrayList<Integer> list, int value) {
     if (value != CLASS_UNKNOWN) {
       list.add(value);
@@ -61,20 +118,20 @@ public class YearClass {
    * (specifically app startup time, scrolling perf, animations) are more uniform within
    * the buckets than with the 2014 calculations.
    */
-  private static int categorizeByYear2016Method(Context c) {
-    long totalRam = DeviceInfo.getTotalMemory(c);
+  private static int categorizeByYear2016Method(DeviceProbe probe) {
+    long totalRam = probe.getTotalMemory();
     if (totalRam == DeviceInfo.DEVICEINFO_UNKNOWN) {
-      return categorizeByYear2014Method(c);
+      return categorizeByYear2014Method(probe);
     }
 
     if (totalRam <= 768 * MB) {
-      return DeviceInfo.getNumberOfCPUCores() <= 1 ? CLASS_2009 : CLASS_2010;
+      return probe.getNumberOfCPUCores() <= 1 ? CLASS_2009 : CLASS_2010;
     }
     if (totalRam <= 1024 * MB) {
-      return DeviceInfo.getCPUMaxFreqKHz() < 1300 * MHZ_IN_KHZ ? CLASS_2011 : CLASS_2012;
+      return probe.getCPUMaxFreqKHz() < 1300 * MHZ_IN_KHZ ? CLASS_2011 : CLASS_2012;
     }
     if (totalRam <= 1536 * MB) {
-      return DeviceInfo.getCPUMaxFreqKHz() < 1800 * MHZ_IN_KHZ ? CLASS_2012 : CLASS_2013;
+      return probe.getCPUMaxFreqKHz() < 1800 * MHZ_IN_KHZ ? CLASS_2012 : CLASS_2013;
     }
     if (totalRam <= 2048 * MB) {
       return CLASS_2013;
@@ -93,11 +150,11 @@ public class YearClass {
    *
    * @return The year when this device would have been considered top-of-the-line.
    */
-  private static int categorizeByYear2014Method(Context c) {
+  private static int categorizeByYear2014Method(DeviceProbe probe) {
     ArrayList<Integer> componentYears = new ArrayList<Integer>();
-    conditionallyAdd(componentYears, getNumCoresYear());
-    conditionallyAdd(componentYears, getClockSpeedYear());
-    conditionallyAdd(componentYears, getRamYear(c));
+    conditionallyAdd(componentYears, getNumCoresYear(probe));
+    conditionallyAdd(componentYears, getClockSpeedYear(probe));
+    conditionallyAdd(componentYears, getRamYear(probe));
     if (componentYears.isEmpty())
       return CLASS_UNKNOWN;
     Collections.sort(componentYears);
@@ -127,8 +184,8 @@ public class YearClass {
    *
    * @return the year in which top-of-the-line phones had the same number of processors as this phone.
    */
-  private static int getNumCoresYear() {
-    int cores = DeviceInfo.getNumberOfCPUCores();
+  private static int getNumCoresYear(DeviceProbe probe) {
+    int cores = probe.getNumberOfCPUCores();
     if (cores < 1) return CLASS_UNKNOWN;
     if (cores == 1) return CLASS_2008;
     if (cores <= 3) return CLASS_2011;
@@ -155,8 +212,8 @@ public class YearClass {
    *
    * @return the year in which top-of-the-line phones had the same clock speed.
    */
-  private static int getClockSpeedYear() {
-    long clockSpeedKHz = DeviceInfo.getCPUMaxFreqKHz();
+  private static int getClockSpeedYear(DeviceProbe probe) {
+    long clockSpeedKHz = probe.getCPUMaxFreqKHz();
     if (clockSpeedKHz == DeviceInfo.DEVICEINFO_UNKNOWN) return CLASS_UNKNOWN;
     // These cut-offs include 20MHz of "slop" because my "1.5GHz" Galaxy S3 reports
     // its clock speed as 1512000. So we add a little slop to keep things nominally correct.
@@ -189,8 +246,8 @@ public class YearClass {
    *
    * @return the year in which top-of-the-line phones had the same amount of RAM as this phone.
    */
-  private static int getRamYear(Context c) {
-    long totalRam = DeviceInfo.getTotalMemory(c);
+  private static int getRamYear(DeviceProbe probe) {
+    long totalRam = probe.getTotalMemory();
     if (totalRam <= 0) return CLASS_UNKNOWN;
     if (totalRam <= 192 * MB) return CLASS_2008;
     if (totalRam <= 290 * MB) return CLASS_2009;
@@ -0,0 +1,322 @@
+/* Copyright (c) 2015, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.device.yearclass;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CachingDeviceProbeTest {
+
+  private static final String FINGERPRINT = "brand/product/device:7.0/NRD90M/1:user/release-keys";
+
+  @Rule
+  public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private File mCacheFile;
+  private File mOnlineFile;
+  private SystemFiles mOriginalFiles;
+  private CountingProbe mProbe;
+  private int mFilesOpened;
+  private int mFilesWritten;
+  private final List<File> mTempFiles = new ArrayList<File>();
+
+  @Before
+  public void setUp() throws IOException {
+    mCacheFile = new File(mTemporaryFolder.getRoot(), "cache.properties");
+    final File root = mTemporaryFolder.newFolder();
+    mOnlineFile = new File(root, "sys/devices/system/cpu/online");
+    mOnlineFile.getParentFile().mkdirs();
+    writeOnlineCPUs("0-3");
+    mOriginalFiles = DeviceInfo.sSystemFiles;
+    DeviceInfo.sSystemFiles = new SystemFiles() {
+      @Override
+      File get(String path) {
+        return new File(root, path);
+      }
+
+      @Override
+      InputStream open(File file) throws IOException {
+        mFilesOpened++;
+        return super.open(file);
+      }
+
+      @Override
+      File createTempFile(String prefix, String suffix, File directory) throws IOException {
+        File file = super.createTempFile(prefix, suffix, directory);
+        mTempFiles.add(file);
+        return file;
+      }
+
+      @Override
+      OutputStream create(File file) throws IOException {
+        mFilesWritten++;
+        return super.create(file);
+      }
+    };
+    mProbe = new CountingProbe(4, 1512000, 2048L * 1024 * 1024);
+  }
+
+  @After
+  public void tearDown() {
+    DeviceInfo.sSystemFiles = mOriginalFiles;
+  }
+
+  @Test
+  public void testImmutableSignalsProbedOncePerFingerprint() {
+    probeAll(FINGERPRINT);
+    probeAll(FINGERPRINT);
+    assertEquals(1, mProbe.mCoresCalls);
+    assertEquals(1, mProbe.mTotalMemoryCalls);
+
+    probeAll("brand/product/device:8.0/OPR1/2:user/release-keys");
+    assertEquals(2, mProbe.mCoresCalls);
+    assertEquals(2, mProbe.mTotalMemoryCalls);
+  }
+
+  @Test
+  public void testCPUMaxFreqReprobedWhenOnlineCPUsChange() throws IOException {
+    probeAll(FINGERPRINT);
+    probeAll(FINGERPRINT);
+    assertEquals(1, mProbe.mCPUMaxFreqCalls);
+
+    writeOnlineCPUs("0-1");
+    mProbe.mCPUMaxFreqKHz = 1190400;
+    CachingDeviceProbe probe = new CachingDeviceProbe(mProbe, mCacheFile, FINGERPRINT, true);
+    assertEquals(1190400, probe.getCPUMaxFreqKHz());
+    assertEquals(2, mProbe.mCPUMaxFreqCalls);
+    // The re-probe uses the cached core count instead of probing the cores again.
+    assertEquals(1, mProbe.mCoresCalls);
+    assertEquals(4, mProbe.mLastCores);
+  }
+
+  @Test
+  public void testCPUMaxFreqNotCachedWhileCoresOffline() throws IOException {
+    writeOnlineCPUs("0-1");
+    probeAll(FINGERPRINT);
+    assertEquals(1, mFilesWritten);
+    writeOnlineCPUs("0-1,3");
+    probeAll(FINGERPRINT);
+    writeOnlineCPUs("0-2");
+    probeAll(FINGERPRINT);
+    writeOnlineCPUs("0-1");
+    probeAll(FINGERPRINT);
+    assertEquals(4, mProbe.mCPUMaxFreqCalls);
+    assertEquals(1, mFilesWritten);
+
+    writeOnlineCPUs("0-3");
+    probeAll(FINGERPRINT);
+    probeAll(FINGERPRINT);
+    assertEquals(5, mProbe.mCPUMaxFreqCalls);
+    assertEquals(2, mFilesWritten);
+  }
+
+  @Test
+  public void testWrittenOnlyOnFlush() {
+    CachingDeviceProbe probe = new CachingDeviceProbe(mProbe, mCacheFile, FINGERPRINT, true);
+    probe.getNumberOfCPUCores();
+    probe.getCPUMaxFreqKHz();
+    probe.getTotalMemory();
+    assertFalse(mCacheFile.exists());
+
+    probe.flush();
+    assertTrue(mCacheFile.exists());
+    assertEquals(0, mCacheFile.getParentFile().list(TEMP_FILES).length);
+    assertEquals(1, mFilesWritten);
+
+    probeAll(FINGERPRINT);
+    assertEquals(1, mFilesWritten);
+  }
+
+  @Test
+  public void testUncachedTotalMemoryLeavesFileUntouched() {
+    probeAll(FINGERPRINT);
+    mFilesOpened = 0;
+    CachingDeviceProbe probe = new CachingDeviceProbe(mProbe, mCacheFile, FINGERPRINT, false);
+    assertEquals(mProbe.mTotalMemory, probe.getTotalMemory());
+    probe.flush();
+    assertEquals(2, mProbe.mTotalMemoryCalls);
+    assertEquals(0, mFilesOpened);
+    assertEquals(1, mFilesWritten);
+  }
+
+  @Test
+  public void testConcurrentFlushesUseSeparateTempFiles() {
+    CachingDeviceProbe first = new CachingDeviceProbe(mProbe, mCacheFile, FINGERPRINT, true);
+    CachingDeviceProbe second = new CachingDeviceProbe(mProbe, mCacheFile, FINGERPRINT, true);
+    first.getNumberOfCPUCores();
+    second.getNumberOfCPUCores();
+    first.flush();
+    second.flush();
+    assertEquals(2, mTempFiles.size());
+    assertNotEquals(mTempFiles.get(0), mTempFiles.get(1));
+    assertEquals(0, mCacheFile.getParentFile().list(TEMP_FILES).length);
+  }
+
+  @Test
+  public void testCPUMaxFreqNotCachedWithoutOnlineCPUs() {
+    mOnlineFile.delete();
+    probeAll(FINGERPRINT);
+    probeAll(FINGERPRINT);
+    assertEquals(2, mProbe.mCPUMaxFreqCalls);
+    assertEquals(1, mProbe.mCoresCalls);
+  }
+
+  @Test
+  public void testImplausibleSignalsNotCached() {
+    mProbe = new CountingProbe(4, 1512000, 32L * 1024 * 1024);
+    probeAll(FINGERPRINT);
+    probeAll(FINGERPRINT);
+    assertEquals(2, mProbe.mTotalMemoryCalls);
+  }
+
+  @Test
+  public void testUnknownSignalsNotCached() {
+    mProbe = new CountingProbe(DeviceInfo.DEVICEINFO_UNKNOWN,
+        DeviceInfo.DEVICEINFO_UNKNOWN, DeviceInfo.DEVICEINFO_UNKNOWN);
+    probeAll(FINGERPRINT);
+    probeAll(FINGERPRINT);
+    assertEquals(2, mProbe.mCoresCalls);
+    assertEquals(2, mProbe.mCPUMaxFreqCalls);
+    assertEquals(2, mProbe.mTotalMemoryCalls);
+  }
+
+  @Test
+  public void testNothingCachedWithoutFingerprint() {
+    probeAll(null);
+    probeAll(null);
+    assertEquals(2, mProbe.mCoresCalls);
+    assertEquals(2, mProbe.mCPUMaxFreqCalls);
+    assertEquals(2, mProbe.mTotalMemoryCalls);
+  }
+
+  @Test
+  public void testFingerprintKeptVerbatim() {
+    String fingerprint = " brand\\product/d\u00e9vice=\u4e2d:7.0/NRD90M/1:user/release-keys";
+    probeAll(fingerprint);
+    probeAll(fingerprint);
+    assertEquals(1, mProbe.mCoresCalls);
+    assertEquals(1, mFilesWritten);
+  }
+
+  @Test
+  public void testMultiLineFingerprintNotCached() {
+    probeAll("brand/product\ndevice");
+    probeAll("brand/product\ndevice");
+    assertEquals(2, mProbe.mCoresCalls);
+    assertEquals(0, mFilesWritten);
+  }
+
+  @Test
+  public void testCorruptCacheIgnored() throws IOException {
+    writeCache("fingerprint=" + FINGERPRINT + "\ncores=four\ntotalMemory=\\uZZZZ\n");
+    CachingDeviceProbe probe = new CachingDeviceProbe(mProbe, mCacheFile, FINGERPRINT, true);
+    assertEquals(4, probe.getNumberOfCPUCores());
+    assertEquals(2048L * 1024 * 1024, probe.getTotalMemory());
+  }
+
+  @Test
+  public void testTruncatedCacheIgnored() throws IOException {
+    probeAll(FINGERPRINT);
+    writeCache("fingerprint=" + FINGERPRINT + "\ntotalMemory=384");
+    probeAll(FINGERPRINT);
+    assertEquals(2, mProbe.mTotalMemoryCalls);
+    probeAll(FINGERPRINT);
+    assertEquals(2, mProbe.mTotalMemoryCalls);
+  }
+
+  private void probeAll(String fingerprint) {
+    CachingDeviceProbe probe = new CachingDeviceProbe(mProbe, mCacheFile, fingerprint, true);
+    assertEquals(mProbe.mCores, probe.getNumberOfCPUCores());
+    assertEquals(mProbe.mCPUMaxFreqKHz, probe.getCPUMaxFreqKHz());
+    assertEquals(mProbe.mTotalMemory, probe.getTotalMemory());
+    probe.flush();
+  }
+
+  private void writeCache(String contents) throws IOException {
+    Writer writer = new FileWriter(mCacheFile);
+    try {
+      writer.write(contents);
+    } finally {
+      writer.close();
+    }
+  }
+
+  private void writeOnlineCPUs(String onlineCPUs) throws IOException {
+    Writer writer = new FileWriter(mOnlineFile);
+    try {
+      writer.write(onlineCPUs + "\n");
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static final FilenameFilter TEMP_FILES = new FilenameFilter() {
+    @Override
+    public boolean accept(File directory, String name) {
+      return name.endsWith(".tmp");
+    }
+  };
+
+  private static class CountingProbe implements DeviceProbe {
+    int mCores;
+    int mCPUMaxFreqKHz;
+    long mTotalMemory;
+    int mCoresCalls;
+    int mCPUMaxFreqCalls;
+    int mTotalMemoryCalls;
+    int mLastCores;
+
+    CountingProbe(int cores, int cpuMaxFreqKHz, long totalMemory) {
+      mCores = cores;
+      mCPUMaxFreqKHz = cpuMaxFreqKHz;
+      mTotalMemory = totalMemory;
+    }
+
+    @Override
+    public int getNumberOfCPUCores() {
+      mCoresCalls++;
+      return mCores;
+    }
+
+    @Override
+    public int getCPUMaxFreqKHz() {
+      mCPUMaxFreqCalls++;
+      return mCPUMaxFreqKHz;
+    }
+
+    @Override
+    public int getCPUMaxFreqKHz(int cores) {
+      mLastCores = cores;
+      return getCPUMaxFreqKHz();
+    }
+
+    @Override
+    public long getTotalMemory() {
+      mTotalMemoryCalls++;
+      return mTotalMemory;
+    }
+  }
+}
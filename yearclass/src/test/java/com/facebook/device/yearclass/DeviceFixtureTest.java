@@ -0,0 +1,349 @@
+/* Copyright (c) 2015, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+package com.facebook.device.yearclass;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Runs the real {@link DeviceInfo} probes against each device tree under
+ * {@code src/test/resources/devices}. Every tree holds the {@code /proc} and {@code /sys} files
+ * of one device plus an {@code expected.properties} with the year class, the value of each
+ * probe and the files checked, files opened and bytes read and written by each probe, including
+ * the first and the cached classification through {@link CachingDeviceProbe}. Those two are
+ * recorded both before and after Jelly Bean, which reads the RAM without any file I/O. A change
+ * to either the classification or the I/O cost of a probe has to update the expectations here.
+ */
+@RunWith(Parameterized.class)
+public class DeviceFixtureTest {
+
+  private static final String DEVICES = "devices";
+  private static final String EXPECTED = "expected.properties";
+  private static final String FINGERPRINT = "fixture/fingerprint";
+
+  @Rule
+  public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  @Parameters(name = "{0}")
+  public static Collection<Object[]> devices() throws URISyntaxException {
+    File root = new File(DeviceFixtureTest.class.getClassLoader().getResource(DEVICES).toURI());
+    File[] trees = root.listFiles();
+    Arrays.sort(trees);
+    List<Object[]> devices = new ArrayList<Object[]>();
+    for (File tree : trees) {
+      if (tree.isDirectory()) {
+        devices.add(new Object[] {tree.getName(), tree});
+      }
+    }
+    return devices;
+  }
+
+  private final File mTree;
+  private final Properties mExpected = new Properties();
+  private FixtureFiles mFiles;
+  private SystemFiles mOriginalFiles;
+
+  public DeviceFixtureTest(String name, File tree) {
+    mTree = tree;
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    InputStream is = new FileInputStream(new File(mTree, EXPECTED));
+    try {
+      mExpected.load(is);
+    } finally {
+      is.close();
+    }
+    mOriginalFiles = DeviceInfo.sSystemFiles;
+    mFiles = new FixtureFiles(mTree);
+    DeviceInfo.sSystemFiles = mFiles;
+  }
+
+  @After
+  public void tearDown() {
+    DeviceInfo.sSystemFiles = mOriginalFiles;
+  }
+
+  @Test
+  public void testNumberOfCPUCores() {
+    assertEquals(expectedInt("cores"), DeviceInfo.getCoresFromSystemFiles());
+    assertCost("cores");
+  }
+
+  @Test
+  public void testCPUMaxFreqKHz() {
+    int cores = DeviceInfo.getCoresFromSystemFiles();
+    mFiles.reset();
+    assertEquals(expectedInt("cpuMaxFreqKHz"), DeviceInfo.getCPUMaxFreqKHz(cores));
+    assertCost("cpuMaxFreqKHz");
+  }
+
+  @Test
+  public void testTotalMemory() {
+    assertEquals(expectedLong("totalMemory"), DeviceInfo.getTotalMemoryFromProcMeminfo());
+    assertCost("totalMemory");
+  }
+
+  @Test
+  public void testOnlineCPUs() {
+    String onlineCPUs = mExpected.getProperty("onlineCPUs");
+    if (onlineCPUs == null) {
+      assertNull(DeviceInfo.getOnlineCPUs());
+    } else {
+      assertEquals(onlineCPUs, DeviceInfo.getOnlineCPUs());
+    }
+    assertCost("onlineCPUs");
+  }
+
+  @Test
+  public void testYearClass() {
+    assertEquals(expectedInt("yearClass"), YearClass.categorize(new FixtureProbe()));
+  }
+
+  @Test
+  public void testCachedYearClass() {
+    assertCachedYearClass(new FixtureProbe(), true, "");
+  }
+
+  @Test
+  public void testCachedYearClassJellyBean() {
+    assertCachedYearClass(
+        new JellyBeanFixtureProbe(expectedLong("totalMemory")), false, "JellyBean");
+  }
+
+  /**
+   * Classifies through a fresh cache, then again through the cache the first run left behind.
+   */
+  private void assertCachedYearClass(DeviceProbe probe, boolean cacheTotalMemory, String suffix) {
+    File cacheFile = new File(mTemporaryFolder.getRoot(), "cache.properties");
+    mFiles.reset();
+    assertEquals(expectedInt("yearClass"), categorizeWithCache(probe, cacheFile, cacheTotalMemory));
+    assertCost("coldYearClass" + suffix);
+    mFiles.reset();
+    assertEquals(expectedInt("yearClass"), categorizeWithCache(probe, cacheFile, cacheTotalMemory));
+    assertCost("cachedYearClass" + suffix);
+  }
+
+  private int categorizeWithCache(DeviceProbe probe, File cacheFile, boolean cacheTotalMemory) {
+    CachingDeviceProbe cachingProbe =
+        new CachingDeviceProbe(probe, cacheFile, FINGERPRINT, cacheTotalMemory);
+    int yearClass = YearClass.categorize(cachingProbe);
+    cachingProbe.flush();
+    return yearClass;
+  }
+
+  private void assertCost(String probe) {
+    assertEquals(probe + " files opened",
+        expectedInt(probe + ".filesOpened"), mFiles.getFilesOpened());
+    assertEquals(probe + " bytes read",
+        expectedLong(probe + ".bytesRead"), mFiles.getBytesRead());
+    // Only the probes that check files before opening them list their checks.
+    assertEquals(probe + " files checked",
+        Long.parseLong(mExpected.getProperty(probe + ".filesChecked", "0")),
+        mFiles.getFilesChecked());
+    // Only the probes that write list their bytes written.
+    assertEquals(probe + " bytes written",
+        Long.parseLong(mExpected.getProperty(probe + ".bytesWritten", "0")),
+        mFiles.getBytesWritten());
+  }
+
+  private String expected(String key) {
+    String value = mExpected.getProperty(key);
+    assertNotNull(mTree.getName() + " is missing " + key, value);
+    return value;
+  }
+
+  private int expectedInt(String key) {
+    return Integer.parseInt(expected(key));
+  }
+
+  private long expectedLong(String key) {
+    return Long.parseLong(expected(key));
+  }
+
+  /**
+   * Mirrors {@link YearClass#systemProbe} on a post-Gingerbread device before Jelly Bean, where the
+   * RAM is read from {@code /proc/meminfo}.
+   */
+  private static class FixtureProbe implements DeviceProbe {
+    @Override
+    public int getNumberOfCPUCores() {
+      return DeviceInfo.getCoresFromSystemFiles();
+    }
+
+    @Override
+    public int getCPUMaxFreqKHz() {
+      return getCPUMaxFreqKHz(DeviceInfo.getCoresFromSystemFiles());
+    }
+
+    @Override
+    public int getCPUMaxFreqKHz(int cores) {
+      return DeviceInfo.getCPUMaxFreqKHz(cores);
+    }
+
+    @Override
+    public long getTotalMemory() {
+      return DeviceInfo.getTotalMemoryFromProcMeminfo();
+    }
+  }
+
+  /**
+   * Mirrors {@link YearClass#systemProbe} on Jelly Bean and later, where the RAM comes from
+   * {@code ActivityManager} without any file I/O.
+   */
+  private static class JellyBeanFixtureProbe extends FixtureProbe {
+    private final long mTotalMemory;
+
+    JellyBeanFixtureProbe(long totalMemory) {
+      mTotalMemory = totalMemory;
+    }
+
+    @Override
+    public long getTotalMemory() {
+      return mTotalMemory;
+    }
+  }
+
+  /**
+   * Resolves system paths inside a device tree and counts the exists and canRead checks, the
+   * files opened, including failed attempts, directory listings, temp files created and files
+   * opened for writing, and the bytes read and written through them.
+   */
+  private static class FixtureFiles extends SystemFiles {
+    private final File mRoot;
+    private int mFilesChecked;
+    private int mFilesOpened;
+    private long mBytesRead;
+    private long mBytesWritten;
+
+    FixtureFiles(File root) {
+      mRoot = root;
+    }
+
+    void reset() {
+      mFilesChecked = 0;
+      mFilesOpened = 0;
+      mBytesRead = 0;
+      mBytesWritten = 0;
+    }
+
+    int getFilesChecked() {
+      return mFilesChecked;
+    }
+
+    int getFilesOpened() {
+      return mFilesOpened;
+    }
+
+    long getBytesRead() {
+      return mBytesRead;
+    }
+
+    long getBytesWritten() {
+      return mBytesWritten;
+    }
+
+    @Override
+    File get(String path) {
+      return new File(mRoot, path);
+    }
+
+    @Override
+    boolean exists(File file) {
+      mFilesChecked++;
+      return super.exists(file);
+    }
+
+    @Override
+    boolean canRead(File file) {
+      mFilesChecked++;
+      return super.canRead(file);
+    }
+
+    @Override
+    File[] listFiles(File directory, FileFilter filter) {
+      mFilesOpened++;
+      return super.listFiles(directory, filter);
+    }
+
+    @Override
+    InputStream open(File file) throws IOException {
+      mFilesOpened++;
+      InputStream is = super.open(file);
+      return new FilterInputStream(is) {
+        @Override
+        public int read() throws IOException {
+          int b = super.read();
+          if (b != -1) {
+            mBytesRead++;
+          }
+          return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+          int count = super.read(buffer, offset, length);
+          if (count > 0) {
+            mBytesRead += count;
+          }
+          return count;
+        }
+      };
+    }
+
+    @Override
+    File createTempFile(String prefix, String suffix, File directory) throws IOException {
+      mFilesOpened++;
+      return super.createTempFile(prefix, suffix, directory);
+    }
+
+    @Override
+    OutputStream create(File file) throws IOException {
+      mFilesOpened++;
+      return new FilterOutputStream(super.create(file)) {
+        @Override
+        public void write(int b) throws IOException {
+          out.write(b);
+          mBytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+          out.write(buffer, offset, length);
+          mBytesWritten += length;
+        }
+      };
+    }
+  }
+}
@@ -99,7 +99,7 @@ public class YearClassTest {
 
   @PrepareForTest(DeviceInfo.class)
   @Test
-  public void testGetYearCategoryS7() {
+  public void testGetYearCategoryNote8() {
     // CPU, frequency, RAM, and YearClass values from Samsung Galaxy Note8 (USA edition).
     int yearClass = getYearClass(8, 2350000, 6144L * 1024 * 1024);
     assertEquals(YearClass.CLASS_2016, yearClass);
@@ -107,7 +107,7 @@ public class YearClassTest {
 
   @PrepareForTest(DeviceInfo.class)
   @Test
-  public void testTotalRAM() {
+  public void testTotalRAM2016() {
     //Test with only total RAM information available.
     int yearClass = getYearClass(DeviceInfo.DEVICEINFO_UNKNOWN,
         DeviceInfo.DEVICEINFO_UNKNOWN, 6144L * 1024 * 1024);